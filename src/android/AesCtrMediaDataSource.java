@@ -0,0 +1,273 @@
+package com.moust.cordova.videoplayer;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaDataSource;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Streams an AES-CTR encrypted file to the MediaPlayer, decrypting only the requested ranges.
+ * <p>
+ * CTR lets any offset be decrypted by deriving its counter block, so seeking only re-initializes
+ * the cipher; sequential reads keep its state. Data goes through direct buffers and the clear
+ * content is never written to memory beyond the current chunk, nor to disk.
+ * Without a key, the file is read as is, which gives the plain-file reference of the benchmark.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+public class AesCtrMediaDataSource extends MediaDataSource {
+
+    private static final String TAG = "AesCtrMediaDataSource";
+
+    private static final String ASSETS = "/android_asset/";
+
+    private static final int BLOCK_SIZE = 16;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final String label;
+
+    private final FileChannel channel;
+
+    private final long offset;
+
+    private final long length;
+
+    private final Closeable owner;
+
+    private final SecretKeySpec key;
+
+    private final byte[] iv;
+
+    private final Cipher cipher;
+
+    private final ByteBuffer in = ByteBuffer.allocateDirect(CHUNK_SIZE + BLOCK_SIZE);
+
+    private final ByteBuffer out = ByteBuffer.allocateDirect(CHUNK_SIZE + 2 * BLOCK_SIZE);
+
+    private long cipherPosition = -1;
+
+    private long bytesRead = 0;
+
+    private long readNanos = 0;
+
+    private AesCtrMediaDataSource(String label, FileChannel channel, long offset, long length, Closeable owner, byte[] key, byte[] iv) throws IOException {
+        this.label = label;
+        this.channel = channel;
+        this.offset = offset;
+        this.length = length;
+        this.owner = owner;
+        if (key != null) {
+            if (iv == null || iv.length != BLOCK_SIZE) {
+                throw new IOException("Invalid IV, expected " + BLOCK_SIZE + " bytes");
+            }
+            try {
+                this.key = new SecretKeySpec(key, "AES");
+                this.iv = iv.clone();
+                this.cipher = Cipher.getInstance("AES/CTR/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e.getLocalizedMessage());
+            }
+        } else {
+            this.key = null;
+            this.iv = null;
+            this.cipher = null;
+        }
+    }
+
+    /**
+     * Opens a local file or an uncompressed asset.
+     *
+     * @param path a path without the "file://" prefix
+     * @param key  the AES key, or null to read the file as is
+     * @param iv   the 16 bytes initial counter block
+     */
+    public static AesCtrMediaDataSource open(Context context, String path, byte[] key, byte[] iv) throws IOException {
+        if (path.startsWith(ASSETS)) {
+            AssetFileDescriptor fd = context.getAssets().openFd(path.substring(ASSETS.length()));
+            FileInputStream stream = fd.createInputStream();
+            return new AesCtrMediaDataSource(path, stream.getChannel(), fd.getStartOffset(), fd.getLength(), stream, key, iv);
+        }
+        FileInputStream stream = new FileInputStream(path);
+        FileChannel channel = stream.getChannel();
+        return new AesCtrMediaDataSource(path, channel, 0, channel.size(), stream, key, iv);
+    }
+
+    @Override
+    public synchronized int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (position < 0 || position >= length) {
+            return -1;
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        int wanted = (int) Math.min(size, length - position);
+        int total = 0;
+        while (total < wanted) {
+            int n = readChunk(position + total, buffer, offset + total, Math.min(wanted - total, CHUNK_SIZE));
+            if (n <= 0) {
+                break;
+            }
+            total += n;
+        }
+        readNanos += SystemClock.elapsedRealtimeNanos() - start;
+        bytesRead += total;
+        return total == 0 ? -1 : total;
+    }
+
+    private int readChunk(long position, byte[] buffer, int offset, int size) throws IOException {
+        // A seek lands mid-block: restart from the block boundary and drop the leading bytes
+        int skip = 0;
+        if (cipher != null && position != cipherPosition) {
+            skip = (int) (position % BLOCK_SIZE);
+            initCipher(position - skip);
+        }
+        long readPosition = position - skip;
+
+        in.clear();
+        in.limit(skip + size);
+        while (in.hasRemaining()) {
+            if (channel.read(in, this.offset + readPosition + in.position()) < 0) {
+                break;
+            }
+        }
+        in.flip();
+        if (in.limit() <= skip) {
+            return -1;
+        }
+
+        ByteBuffer clear;
+        if (cipher != null) {
+            out.clear();
+            try {
+                cipher.update(in, out);
+            } catch (GeneralSecurityException e) {
+                cipherPosition = -1;
+                throw new IOException(e.getLocalizedMessage());
+            }
+            out.flip();
+            cipherPosition = readPosition + out.limit();
+            clear = out;
+        } else {
+            clear = in;
+        }
+        clear.position(skip);
+        int n = clear.remaining();
+        clear.get(buffer, offset, n);
+        return n;
+    }
+
+    private void initCipher(long position) throws IOException {
+        // Counter block of the position: the IV plus the block index, as a 128-bit big endian integer
+        byte[] counter = iv.clone();
+        long carry = position / BLOCK_SIZE;
+        for (int i = BLOCK_SIZE - 1; i >= 0 && carry != 0; i--) {
+            long sum = (counter[i] & 0xff) + (carry & 0xff);
+            counter[i] = (byte) sum;
+            carry = (carry >>> 8) + (sum >>> 8);
+        }
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(counter));
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e.getLocalizedMessage());
+        }
+        cipherPosition = position;
+    }
+
+    @Override
+    public long getSize() {
+        return length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (bytesRead > 0) {
+            try {
+                PlaybackMetrics.record("decryption", describe());
+            } catch (JSONException e) {
+                // ignore
+            }
+        }
+        owner.close();
+    }
+
+    private JSONObject describe() throws JSONException {
+        JSONObject data = new JSONObject();
+        data.put("uri", label);
+        data.put("encrypted", cipher != null);
+        data.put("bytes", bytesRead);
+        data.put("readMs", readNanos / 1000000);
+        data.put("mbps", readNanos > 0 ? bytesRead * 8000D / readNanos : 0);
+        return data;
+    }
+
+    /**
+     * Measures the read throughput of the given file, once as is and once decrypted, sequentially
+     * and with random 4 KiB reads, the way a MediaPlayer reads during playback and seeks.
+     */
+    public static JSONObject benchmark(Context context, String path, byte[] key, byte[] iv) throws IOException, JSONException {
+        JSONObject result = new JSONObject();
+        result.put("plain", benchmark(open(context, path, null, null)));
+        result.put("decrypted", benchmark(open(context, path, key, iv)));
+        Log.d(TAG, "Benchmark " + path + ": " + result);
+        return result;
+    }
+
+    private static JSONObject benchmark(AesCtrMediaDataSource source) throws IOException, JSONException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        JSONObject result = new JSONObject();
+        try {
+            long start = SystemClock.elapsedRealtimeNanos();
+            long position = 0;
+            int n;
+            while ((n = source.readAt(position, buffer, 0, buffer.length)) > 0) {
+                position += n;
+            }
+            long sequentialNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            Random random = new Random(0);
+            int reads = 256;
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < reads; i++) {
+                source.readAt((long) (random.nextDouble() * source.getSize()), buffer, 0, 4096);
+            }
+            long randomNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            result.put("bytes", position);
+            result.put("sequentialMs", sequentialNanos / 1000000);
+            result.put("sequentialMbps", sequentialNanos > 0 ? position * 8000D / sequentialNanos : 0);
+            result.put("randomReads", reads);
+            result.put("randomReadUs", randomNanos / 1000 / reads);
+        } finally {
+            source.bytesRead = 0;
+            source.close();
+        }
+        return result;
+    }
+
+    public static byte[] hexToBytes(String hex) {
+        if (hex == null || hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Invalid hex string");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,249 @@
+package com.moust.cordova.videoplayer;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ImageDecoder;
+import android.graphics.Movie;
+import android.graphics.drawable.AnimatedImageDrawable;
+import android.graphics.drawable.AnimationDrawable;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.Size;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes animated images (GIF, WebP, AVIF) off the main thread, which Picasso only shows
+ * the first frame of.
+ * <p>
+ * On Android 9+ {@link ImageDecoder} returns an AnimatedImageDrawable, animated by the
+ * RenderThread. Older devices only get GIF support, through {@link Movie} frames pre-rendered
+ * into an AnimationDrawable whose size is bounded by {@link #FRAME_CACHE_BYTES}.
+ * Images that turn out not to be animated are handed back to Picasso and its memory cache.
+ */
+public class AnimatedImageLoader {
+
+    private static final String TAG = "AnimatedImageLoader";
+
+    private static final String ASSETS = "/android_asset/";
+
+    private static final int FRAME_CACHE_BYTES = 16 * 1024 * 1024;
+
+    private static final int MIN_FRAME_DURATION_MS = 40;
+
+    private static final int MAX_STATIC_IMAGES = 256;
+
+    public interface Callback {
+        void onLoaded(Drawable drawable);
+
+        /**
+         * The image turned out not to be animated, it should be loaded through Picasso and its cache.
+         */
+        void onStatic();
+
+        void onError(Exception e);
+    }
+
+    private static class StaticImageException extends RuntimeException {
+    }
+
+    // Images known not to be animated, so they don't get probed again each time they are displayed
+    private static final Map<String, Boolean> staticImages = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_STATIC_IMAGES;
+        }
+    });
+
+    private final Context context;
+
+    // Shared by all dialogs, its thread ends when idle
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public AnimatedImageLoader(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Tells whether the given image should go through this loader on this device.
+     */
+    public static boolean isSupported(Uri uri) {
+        if (staticImages.containsKey(uri.toString())) {
+            return false;
+        }
+        String scheme = uri.getScheme();
+        if (scheme != null && !"file".equals(scheme) && !"content".equals(scheme)) {
+            return false;
+        }
+        String path = uri.getPath() == null ? "" : uri.getPath().toLowerCase(Locale.US);
+        if (path.endsWith(".avif")) {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            return path.endsWith(".gif") || path.endsWith(".webp");
+        }
+        return path.endsWith(".gif");
+    }
+
+    /**
+     * Decodes the image, downsampled to roughly fit the given size, and calls back on the main thread.
+     *
+     * @param width  the target width, 0 to keep the original size
+     * @param height the target height, 0 to keep the original size
+     */
+    public void load(final Uri uri, final int width, final int height, final Callback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final Drawable drawable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                            ? decode(uri, width, height)
+                            : decodeMovie(uri, width, height);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onLoaded(drawable);
+                        }
+                    });
+                } catch (StaticImageException e) {
+                    staticImages.put(uri.toString(), Boolean.TRUE);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onStatic();
+                        }
+                    });
+                } catch (final Exception e) {
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onError(e);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private Drawable decode(Uri uri, final int width, final int height) throws IOException {
+        String path = VideoPlayerDialog.stripFileProtocol(uri.toString());
+        ImageDecoder.Source source;
+        if (path.startsWith(ASSETS)) {
+            source = ImageDecoder.createSource(context.getAssets(), path.substring(ASSETS.length()));
+        } else if (path.startsWith("/")) {
+            source = ImageDecoder.createSource(new File(path));
+        } else {
+            source = ImageDecoder.createSource(context.getContentResolver(), uri);
+        }
+        Drawable drawable = ImageDecoder.decodeDrawable(source, new ImageDecoder.OnHeaderDecodedListener() {
+            @Override
+            public void onHeaderDecoded(ImageDecoder decoder, ImageDecoder.ImageInfo info, ImageDecoder.Source source) {
+                if (!info.isAnimated()) {
+                    // Abort before any pixel is decoded
+                    throw new StaticImageException();
+                }
+                Size size = info.getSize();
+                decoder.setTargetSampleSize(sampleSize(size.getWidth(), size.getHeight(), width, height));
+            }
+        });
+        if (!(drawable instanceof AnimatedImageDrawable)) {
+            throw new StaticImageException();
+        }
+        return drawable;
+    }
+
+    private Drawable decodeMovie(Uri uri, int width, int height) throws IOException {
+        byte[] data = readFully(uri);
+        Movie movie = Movie.decodeByteArray(data, 0, data.length);
+        if (movie == null || movie.width() <= 0 || movie.height() <= 0) {
+            throw new IOException("Unable to decode " + uri);
+        }
+        if (movie.duration() <= 0) {
+            throw new StaticImageException();
+        }
+
+        int sampleSize = sampleSize(movie.width(), movie.height(), width, height);
+        int frameWidth = Math.max(1, movie.width() / sampleSize);
+        int frameHeight = Math.max(1, movie.height() / sampleSize);
+        int duration = movie.duration();
+
+        // Sample the animation coarsely enough for all frames to fit in the cache budget
+        int maxFrames = Math.max(1, FRAME_CACHE_BYTES / (frameWidth * frameHeight * 4));
+        int frameDuration = Math.max(MIN_FRAME_DURATION_MS, duration / maxFrames + (duration % maxFrames == 0 ? 0 : 1));
+        int frames = duration <= 0 ? 1 : Math.min(maxFrames, Math.max(1, duration / frameDuration));
+
+        Resources resources = context.getResources();
+        AnimationDrawable animation = new AnimationDrawable();
+        animation.setOneShot(frames == 1);
+        for (int i = 0; i < frames; i++) {
+            Bitmap frame = Bitmap.createBitmap(frameWidth, frameHeight, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(frame);
+            canvas.scale(1F / sampleSize, 1F / sampleSize);
+            movie.setTime(i * frameDuration);
+            movie.draw(canvas, 0, 0);
+            animation.addFrame(new BitmapDrawable(resources, frame), frameDuration);
+        }
+        Log.d(TAG, "Cached " + frames + " frames of " + frameWidth + "x" + frameHeight + " for " + uri);
+        return animation;
+    }
+
+    private byte[] readFully(Uri uri) throws IOException {
+        String path = VideoPlayerDialog.stripFileProtocol(uri.toString());
+        InputStream in;
+        if (path.startsWith(ASSETS)) {
+            in = context.getAssets().open(path.substring(ASSETS.length()));
+        } else if (path.startsWith("/")) {
+            in = new FileInputStream(path);
+        } else {
+            in = context.getContentResolver().openInputStream(uri);
+            if (in == null) {
+                throw new IOException("Unable to open " + uri);
+            }
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (targetWidth > 0 && targetHeight > 0) {
+            while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+                sampleSize *= 2;
+            }
+        }
+        return sampleSize;
+    }
+}
@@ -0,0 +1,181 @@
+package com.moust.cordova.videoplayer;
+
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PersistableBundle;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Frame delivery statistics of a single playlist item, summarized into one metrics event.
+ * <p>
+ * UI frames are only observed during the transition window following the item start, where
+ * the imageView and playerView are swapped: afterwards the UI thread is idle and watching every
+ * vsync would only wake the CPU. Video frames don't go through the UI thread at all and are
+ * taken from the MediaPlayer metrics when the item ends.
+ */
+public class FrameStats implements Choreographer.FrameCallback {
+
+    private static final String TAG = "FrameStats";
+
+    private static final long TRANSITION_WINDOW_MS = 2000;
+
+    private final Window window;
+
+    private final Uri uri;
+
+    private final String kind;
+
+    private final Display display;
+
+    private long frameIntervalNanos;
+
+    private final long startTime = SystemClock.elapsedRealtime();
+
+    private boolean observing = false;
+
+    private long lastFrameTimeNanos = 0;
+
+    private int uiFrames = 0;
+
+    private int missedVsyncs = 0;
+
+    private long maxFrameNanos = 0;
+
+    private int renderedFrames = 0;
+
+    private int longFrames = 0;
+
+    private Object frameMetricsListener;
+
+    public FrameStats(Window window, Uri uri, String kind) {
+        this.window = window;
+        this.uri = uri;
+        this.kind = kind;
+
+        display = window.getWindowManager().getDefaultDisplay();
+        updateFrameInterval();
+    }
+
+    public boolean isVideo() {
+        return "video".equals(kind);
+    }
+
+    public void start() {
+        observing = true;
+        Choreographer.getInstance().postFrameCallback(this);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            Window.OnFrameMetricsAvailableListener listener = new Window.OnFrameMetricsAvailableListener() {
+                @Override
+                public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+                    renderedFrames += 1 + dropCountSinceLastInvocation;
+                    long budget = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                            ? frameMetrics.getMetric(FrameMetrics.DEADLINE)
+                            : frameIntervalNanos;
+                    if (frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION) > budget) {
+                        longFrames++;
+                    }
+                }
+            };
+            try {
+                window.addOnFrameMetricsAvailableListener(listener, new Handler(Looper.getMainLooper()));
+                frameMetricsListener = listener;
+            } catch (IllegalStateException e) {
+                // not hardware accelerated
+            }
+        }
+    }
+
+    private void updateFrameInterval() {
+        float refreshRate = display.getRefreshRate();
+        frameIntervalNanos = (long) (1000000000L / (refreshRate > 0 ? refreshRate : 60F));
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!observing) {
+            return;
+        }
+        // matchFrameRate may switch the display mode during the observation window
+        updateFrameInterval();
+        if (lastFrameTimeNanos > 0) {
+            long delta = frameTimeNanos - lastFrameTimeNanos;
+            long missed = Math.round((double) delta / frameIntervalNanos) - 1;
+            if (missed > 0) {
+                missedVsyncs += missed;
+            }
+            maxFrameNanos = Math.max(maxFrameNanos, delta);
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+        uiFrames++;
+
+        if (SystemClock.elapsedRealtime() - startTime < TRANSITION_WINDOW_MS) {
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            stopObserving();
+        }
+    }
+
+    private void stopObserving() {
+        observing = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        if (frameMetricsListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            try {
+                window.removeOnFrameMetricsAvailableListener((Window.OnFrameMetricsAvailableListener) frameMetricsListener);
+            } catch (RuntimeException e) {
+                // ignore
+            }
+            frameMetricsListener = null;
+        }
+    }
+
+    /**
+     * Stops observing and returns the item summary.
+     *
+     * @param result how the item ended
+     * @param player the player of a video item, read before it is stopped; may be null
+     */
+    public JSONObject finish(String result, MediaPlayer player) {
+        stopObserving();
+
+        JSONObject summary = new JSONObject();
+        try {
+            summary.put("uri", uri.toString());
+            summary.put("kind", kind);
+            summary.put("result", result);
+            summary.put("duration", SystemClock.elapsedRealtime() - startTime);
+            summary.put("uiFrames", uiFrames);
+            summary.put("missedVsyncs", missedVsyncs);
+            summary.put("maxFrameMs", maxFrameNanos / 1000000);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                summary.put("renderedFrames", renderedFrames);
+                summary.put("longFrames", longFrames);
+            }
+            if (player != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                try {
+                    PersistableBundle metrics = player.getMetrics();
+                    if (metrics != null) {
+                        summary.put("videoFrames", metrics.getInt(MediaPlayer.MetricsConstants.FRAMES, -1));
+                        summary.put("videoFramesDropped", metrics.getInt(MediaPlayer.MetricsConstants.FRAMES_DROPPED, -1));
+                    }
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Failed to read player metrics", e);
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to summarize " + uri, e);
+        }
+        return summary;
+    }
+}
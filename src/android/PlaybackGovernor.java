@@ -0,0 +1,173 @@
+package com.moust.cordova.videoplayer;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Watches the thermal status and the battery/charging state and scales playback down
+ * while the device is under pressure. Every level change and decision is reported
+ * through {@link PlaybackMetrics}.
+ */
+public class PlaybackGovernor {
+
+    private static final String TAG = "PlaybackGovernor";
+
+    public static final int LEVEL_NORMAL = 0;
+    public static final int LEVEL_CONSTRAINED = 1;
+    public static final int LEVEL_CRITICAL = 2;
+
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    private static final float[] IMAGE_DURATION_FACTOR = {1F, 1.5F, 2F};
+
+    private final Context context;
+
+    private final PowerManager powerManager;
+
+    private Object thermalListener;
+
+    private int level = -1;
+
+    public PlaybackGovernor(Context context) {
+        this.context = context.getApplicationContext();
+        this.powerManager = (PowerManager) this.context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    public void start() {
+        if (thermalListener == null && powerManager != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            PowerManager.OnThermalStatusChangedListener listener = new PowerManager.OnThermalStatusChangedListener() {
+                @Override
+                public void onThermalStatusChanged(int status) {
+                    evaluate();
+                }
+            };
+            powerManager.addThermalStatusListener(listener);
+            thermalListener = listener;
+        }
+        evaluate();
+    }
+
+    public void stop() {
+        if (thermalListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            powerManager.removeThermalStatusListener((PowerManager.OnThermalStatusChangedListener) thermalListener);
+        }
+        thermalListener = null;
+    }
+
+    /**
+     * Re-reads the device state and returns the current pressure level.
+     */
+    public synchronized int evaluate() {
+        int thermalStatus = -1;
+        int thermalLevel = LEVEL_NORMAL;
+        if (powerManager != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            thermalStatus = powerManager.getCurrentThermalStatus();
+            if (thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE) {
+                thermalLevel = LEVEL_CRITICAL;
+            } else if (thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE) {
+                thermalLevel = LEVEL_CONSTRAINED;
+            }
+        }
+
+        // Sticky broadcast, no receiver is registered
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int batteryPercent = -1;
+        boolean charging = true;
+        if (battery != null) {
+            int rawLevel = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (rawLevel >= 0 && scale > 0) {
+                batteryPercent = rawLevel * 100 / scale;
+            }
+            charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        }
+        boolean powerSave = powerManager != null && powerManager.isPowerSaveMode();
+
+        int batteryLevel = LEVEL_NORMAL;
+        if (powerSave || (!charging && batteryPercent >= 0 && batteryPercent < LOW_BATTERY_PERCENT)) {
+            batteryLevel = LEVEL_CONSTRAINED;
+        }
+
+        int newLevel = Math.max(thermalLevel, batteryLevel);
+        if (newLevel != level) {
+            Log.d(TAG, "Level " + level + " -> " + newLevel);
+            level = newLevel;
+            try {
+                JSONObject data = new JSONObject();
+                data.put("level", newLevel);
+                data.put("thermalStatus", thermalStatus);
+                data.put("batteryPercent", batteryPercent);
+                data.put("charging", charging);
+                data.put("powerSave", powerSave);
+                PlaybackMetrics.record("governor", data);
+            } catch (JSONException e) {
+                // ignore
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Picks the source to play: the original one when the device is fine, otherwise one of
+     * its lower-resolution variants, ordered from the highest to the lowest resolution.
+     */
+    public Uri selectSource(Uri source, List<Uri> variants) {
+        int current = evaluate();
+        if (current == LEVEL_NORMAL || variants == null || variants.isEmpty()) {
+            return source;
+        }
+        Uri selected = current >= LEVEL_CRITICAL ? variants.get(variants.size() - 1) : variants.get(0);
+        recordDecision("variant", current, source.toString(), selected.toString());
+        return selected;
+    }
+
+    /**
+     * Lengthens the image dwell while the device is under pressure, so fewer items are decoded.
+     */
+    public long adjustImageDuration(long durationMs) {
+        int current = evaluate();
+        if (current == LEVEL_NORMAL || durationMs <= 0) {
+            return durationMs;
+        }
+        long adjusted = (long) (durationMs * IMAGE_DURATION_FACTOR[current]);
+        recordDecision("imageDuration", current, durationMs, adjusted);
+        return adjusted;
+    }
+
+    /**
+     * Tells whether optional background work (preloading, warm-up) may run now.
+     */
+    public boolean allowPreload() {
+        int current = evaluate();
+        if (current == LEVEL_NORMAL) {
+            return true;
+        }
+        recordDecision("preload", current, true, false);
+        return false;
+    }
+
+    private static void recordDecision(String decision, int level, Object from, Object to) {
+        Log.d(TAG, "Decision " + decision + " at level " + level + ": " + from + " -> " + to);
+        try {
+            JSONObject data = new JSONObject();
+            data.put("decision", decision);
+            data.put("level", level);
+            data.put("from", from);
+            data.put("to", to);
+            PlaybackMetrics.record("governorDecision", data);
+        } catch (JSONException e) {
+            // ignore
+        }
+    }
+}
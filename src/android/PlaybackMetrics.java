@@ -0,0 +1,70 @@
+package com.moust.cordova.videoplayer;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded in-memory buffer of playback events, drained from JS through the "metrics" action.
+ */
+public final class PlaybackMetrics {
+
+    private static final String TAG = "PlaybackMetrics";
+
+    private static final int MAX_EVENTS = 500;
+
+    private static final ArrayDeque<JSONObject> events = new ArrayDeque<JSONObject>();
+
+    private static int dropped = 0;
+
+    private PlaybackMetrics() {
+    }
+
+    /**
+     * Appends an event, dropping the oldest one when the buffer is full.
+     *
+     * @param type the event type
+     * @param data the event payload, may be null
+     */
+    public static void record(String type, JSONObject data) {
+        JSONObject event = data != null ? data : new JSONObject();
+        try {
+            event.put("type", type);
+            event.put("time", System.currentTimeMillis());
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to record " + type, e);
+            return;
+        }
+        synchronized (events) {
+            if (events.size() >= MAX_EVENTS) {
+                events.removeFirst();
+                dropped++;
+            }
+            events.addLast(event);
+        }
+    }
+
+    /**
+     * Returns and clears all buffered events.
+     */
+    public static JSONObject drain() throws JSONException {
+        JSONArray list = new JSONArray();
+        int droppedCount;
+        synchronized (events) {
+            for (JSONObject event : events) {
+                list.put(event);
+            }
+            events.clear();
+            droppedCount = dropped;
+            dropped = 0;
+        }
+        JSONObject result = new JSONObject();
+        result.put("events", list);
+        result.put("dropped", droppedCount);
+        return result;
+    }
+}
@@ -0,0 +1,148 @@
+package com.moust.cordova.videoplayer;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.squareup.picasso.Picasso;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Pays the one-time costs of the first playback ahead of time: image pipeline singleton
+ * and hardware decoder instantiation. Meant to run on a background thread at plugin load.
+ */
+public final class PlayerWarmUp {
+
+    private static final String TAG = "PlayerWarmUp";
+
+    private static final String ASSETS = "/android_asset/";
+
+    private static final long DECODE_TIMEOUT_MS = 1000;
+
+    private static final long DEQUEUE_TIMEOUT_US = 10000;
+
+    private PlayerWarmUp() {
+    }
+
+    public static void warmUpImagePipeline() {
+        long start = SystemClock.elapsedRealtime();
+        Picasso.get();
+        Log.d(TAG, "Image pipeline ready in " + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    /**
+     * Instantiates a decoder and decodes the first frame of the given clip, so the codec
+     * component and its libraries are loaded when the first real item gets prepared.
+     * Without a clip, a decoder for the given mime type is only created and configured.
+     *
+     * @param clipPath a path without the "file://" prefix, may be null
+     * @param mime     the codec to warm up when no clip is given
+     */
+    public static void warmUpDecoder(Context context, String clipPath, String mime) {
+        long start = SystemClock.elapsedRealtime();
+        MediaExtractor extractor = null;
+        AssetFileDescriptor fd = null;
+        MediaCodec codec = null;
+        try {
+            MediaFormat format = null;
+            if (clipPath != null) {
+                extractor = new MediaExtractor();
+                if (clipPath.startsWith(ASSETS)) {
+                    fd = context.getAssets().openFd(clipPath.substring(ASSETS.length()));
+                    extractor.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+                } else {
+                    extractor.setDataSource(clipPath);
+                }
+                for (int i = 0; i < extractor.getTrackCount(); i++) {
+                    MediaFormat trackFormat = extractor.getTrackFormat(i);
+                    String trackMime = trackFormat.getString(MediaFormat.KEY_MIME);
+                    if (trackMime != null && trackMime.startsWith("video/")) {
+                        extractor.selectTrack(i);
+                        format = trackFormat;
+                        mime = trackMime;
+                        break;
+                    }
+                }
+            }
+            if (format == null) {
+                format = MediaFormat.createVideoFormat(mime, 1280, 720);
+                if (extractor != null) {
+                    Log.w(TAG, "No video track in " + clipPath);
+                    extractor.release();
+                    extractor = null;
+                }
+            }
+
+            codec = MediaCodec.createDecoderByType(mime);
+            codec.configure(format, null, null, 0);
+            codec.start();
+            if (extractor != null) {
+                decodeFirstFrame(codec, extractor);
+            }
+            Log.d(TAG, "Decoder " + codec.getName() + " warmed up in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to warm up " + mime + " decoder", e);
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException e) {
+                    // ignore
+                }
+                codec.release();
+            }
+            if (extractor != null) {
+                extractor.release();
+            }
+            if (fd != null) {
+                try {
+                    fd.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static ByteBuffer getInputBufferCompat(MediaCodec codec, int index) {
+        return codec.getInputBuffers()[index];
+    }
+
+    private static void decodeFirstFrame(MediaCodec codec, MediaExtractor extractor) {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        boolean inputDone = false;
+        long deadline = SystemClock.elapsedRealtime() + DECODE_TIMEOUT_MS;
+        while (SystemClock.elapsedRealtime() < deadline) {
+            if (!inputDone) {
+                int inputIndex = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                if (inputIndex >= 0) {
+                    ByteBuffer input = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                            ? codec.getInputBuffer(inputIndex)
+                            : getInputBufferCompat(codec, inputIndex);
+                    int size = extractor.readSampleData(input, 0);
+                    if (size < 0) {
+                        codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    } else {
+                        codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+            int outputIndex = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+            if (outputIndex >= 0) {
+                codec.releaseOutputBuffer(outputIndex, false);
+                return;
+            }
+        }
+        Log.w(TAG, "No frame decoded within " + DECODE_TIMEOUT_MS + "ms");
+    }
+}
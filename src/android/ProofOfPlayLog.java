@@ -0,0 +1,295 @@
+package com.moust.cordova.videoplayer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+
+/**
+ * Append-only, line-delimited JSON record of every played item.
+ * <p>
+ * Records are handed to a background thread which owns the files: the playback thread never
+ * does any I/O. Writes are buffered and synced to disk in batches, at most every
+ * {@link #SYNC_INTERVAL_MS} or {@link #SYNC_BATCH} records, and the log is rotated by size.
+ */
+public class ProofOfPlayLog {
+
+    private static final String TAG = "ProofOfPlayLog";
+
+    private static final String DIR = "videoplayer-pop";
+
+    private static final String FILE_NAME = "pop.log";
+
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+
+    private static final int MAX_FILES = 5;
+
+    private static final int SYNC_BATCH = 32;
+
+    private static final long SYNC_INTERVAL_MS = 5000;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static ProofOfPlayLog instance;
+
+    private final File dir;
+
+    private final Handler handler;
+
+    private FileOutputStream out;
+
+    private byte[] pending = new byte[8 * 1024];
+
+    private int pendingLength = 0;
+
+    private int unsynced = 0;
+
+    private long size = 0;
+
+    private final Runnable syncRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sync();
+        }
+    };
+
+    public static synchronized ProofOfPlayLog get(Context context) {
+        if (instance == null) {
+            instance = new ProofOfPlayLog(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ProofOfPlayLog(Context context) {
+        dir = new File(context.getFilesDir(), DIR);
+
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Queues the record of a finished item.
+     *
+     * @param uri   the item URI
+     * @param kind  "video" or "image"
+     * @param start the epoch time the item started showing, in milliseconds
+     * @param end   the epoch time the item ended, in milliseconds
+     * @param result how the item ended: "completed", "error", "replaced" or "stopped"
+     * @param what  the MediaPlayer.onError "what" code, 0 if none
+     * @param extra the MediaPlayer.onError "extra" code, 0 if none
+     */
+    public void record(String uri, String kind, long start, long end, String result, int what, int extra) {
+        final JSONObject record = new JSONObject();
+        try {
+            record.put("uri", uri);
+            record.put("kind", kind);
+            record.put("start", start);
+            record.put("end", end);
+            record.put("result", result);
+            if (what != 0 || extra != 0) {
+                record.put("what", what);
+                record.put("extra", extra);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to record " + uri, e);
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                append(record.toString());
+            }
+        });
+    }
+
+    /**
+     * Reads the whole log, oldest record first, on the writer thread.
+     *
+     * @param clear    deletes the returned records
+     * @param callback receives the records, called on the writer thread
+     */
+    public void export(final boolean clear, final ExportCallback callback) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sync();
+                    JSONArray records = new JSONArray();
+                    for (int i = MAX_FILES - 1; i >= 0; i--) {
+                        readInto(file(i), records);
+                    }
+                    if (clear) {
+                        close();
+                        for (int i = 0; i < MAX_FILES; i++) {
+                            file(i).delete();
+                        }
+                    }
+                    callback.onExported(records, null);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to export", e);
+                    callback.onExported(null, e);
+                }
+            }
+        });
+    }
+
+    public interface ExportCallback {
+        void onExported(JSONArray records, Exception error);
+    }
+
+    private File file(int index) {
+        return new File(dir, index == 0 ? FILE_NAME : FILE_NAME + "." + index);
+    }
+
+    private void append(String line) {
+        byte[] bytes = (line + "\n").getBytes(UTF8);
+        if (pendingLength + bytes.length > pending.length) {
+            byte[] grown = new byte[Math.max(pending.length * 2, pendingLength + bytes.length)];
+            System.arraycopy(pending, 0, grown, 0, pendingLength);
+            pending = grown;
+        }
+        System.arraycopy(bytes, 0, pending, pendingLength, bytes.length);
+        pendingLength += bytes.length;
+        unsynced++;
+
+        if (unsynced >= SYNC_BATCH) {
+            handler.removeCallbacks(syncRunnable);
+            sync();
+        } else if (unsynced == 1) {
+            handler.postDelayed(syncRunnable, SYNC_INTERVAL_MS);
+        }
+    }
+
+    private void sync() {
+        handler.removeCallbacks(syncRunnable);
+        if (pendingLength == 0) {
+            return;
+        }
+        long start = SystemClock.elapsedRealtime();
+        try {
+            if (out != null && size + pendingLength > MAX_FILE_SIZE) {
+                rotate();
+            }
+            if (out == null) {
+                open();
+            }
+            long sizeBefore = size;
+            try {
+                out.write(pending, 0, pendingLength);
+            } catch (IOException e) {
+                // Drop a partial write, the whole batch is retried
+                try {
+                    out.getChannel().truncate(sizeBefore);
+                } catch (IOException ignored) {
+                    // ignore
+                }
+                throw e;
+            }
+            // Written records are never written again, even if the sync below fails
+            int records = unsynced;
+            size += pendingLength;
+            pendingLength = 0;
+            unsynced = 0;
+            out.getFD().sync();
+            Log.v(TAG, "Synced " + records + " records in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        } catch (IOException e) {
+            // Unwritten records stay pending, they are retried with the next batch
+            Log.e(TAG, "Failed to write log", e);
+            close();
+        }
+    }
+
+    private void open() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        File current = file(0);
+        if (current.length() > 0 && current.length() + pendingLength > MAX_FILE_SIZE) {
+            rotate();
+        }
+        boolean torn = !endsWithNewline(current);
+        out = new FileOutputStream(current, true);
+        size = current.length();
+        if (torn) {
+            // Terminate the record torn by a power loss, so the next one isn't glued to it
+            out.write('\n');
+            size++;
+        }
+    }
+
+    private static boolean endsWithNewline(File file) throws IOException {
+        long length = file.length();
+        if (length == 0) {
+            return true;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(length - 1);
+            return raf.read() == '\n';
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void rotate() {
+        close();
+        file(MAX_FILES - 1).delete();
+        for (int i = MAX_FILES - 2; i >= 0; i--) {
+            File from = file(i);
+            if (from.exists() && !from.renameTo(file(i + 1))) {
+                Log.e(TAG, "Failed to rotate " + from);
+            }
+        }
+    }
+
+    private void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            out = null;
+        }
+        size = 0;
+    }
+
+    private static void readInto(File file, JSONArray records) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                try {
+                    records.put(new JSONObject(line));
+                } catch (JSONException e) {
+                    // Torn last line after a power loss
+                    Log.w(TAG, "Skipping corrupted record in " + file);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.moust.cordova.videoplayer;
+
+/**
+ * Supplies the AES keys of encrypted media. Register an implementation from the
+ * application with {@link VideoPlayer#setKeyProvider(VideoKeyProvider)}.
+ */
+public interface VideoKeyProvider {
+
+    /**
+     * Returns the raw AES key (16, 24 or 32 bytes) identified by the given id,
+     * or null when it is unknown.
+     *
+     * @param keyId the "keyId" of the "encryption" play option
+     */
+    byte[] getKey(String keyId);
+}
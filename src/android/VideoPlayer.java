@@ -3,8 +3,10 @@ package com.moust.cordova.videoplayer;
 import android.content.Intent;
 import android.media.MediaPlayer;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.ResultReceiver;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -12,21 +14,75 @@ import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaArgs;
 import org.apache.cordova.CordovaResourceApi;
 import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class VideoPlayer extends VideoPlayerOld {
 
     private static final String LOG_TAG = "VideoPlayer";
 
     private static boolean USE_OLD_PLUGIN = false;
 
+    private static volatile VideoKeyProvider keyProvider = null;
+
     private final PlaybackResultReceiver resultReceiver = new PlaybackResultReceiver();
 
     private CallbackContext callbackContext = null;
 
     private VideoPlayerDialog dialog = null;
 
+    private VideoThumbnailer thumbnailer = null;
+
+    private PlaybackGovernor governor = null;
+
+    private VideoPlayerDialog warmDialog = null;
+
+    private volatile boolean warmedUp = false;
+
+    private boolean firstPlay = true;
+
+    /**
+     * Warms up the player when the "VideoPlayerWarmUp" preference is set, so the first
+     * playback doesn't pay for the dialog, image pipeline and decoder initialization.
+     */
+    @Override
+    protected void pluginInitialize() {
+        if (USE_OLD_PLUGIN || !preferences.getBoolean("VideoPlayerWarmUp", false)) {
+            return;
+        }
+        if (!new PlaybackGovernor(cordova.getActivity()).allowPreload()) {
+            Log.d(LOG_TAG, "Skipping warm-up, device under pressure");
+            return;
+        }
+
+        String clip = preferences.getString("VideoPlayerWarmUpClip", null);
+        final String clipPath = TextUtils.isEmpty(clip) ? null : VideoPlayerDialog.stripFileProtocol(remapUri(clip).toString());
+        final String codec = preferences.getString("VideoPlayerWarmUpCodec", "video/avc");
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (dialog == null && warmDialog == null) {
+                    warmDialog = new VideoPlayerDialog(cordova.getActivity());
+                }
+            }
+        });
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtime();
+                PlayerWarmUp.warmUpImagePipeline();
+                PlayerWarmUp.warmUpDecoder(cordova.getActivity(), clipPath, codec);
+                warmedUp = true;
+                Log.d(LOG_TAG, "Warm-up done in " + (SystemClock.elapsedRealtime() - start) + "ms");
+            }
+        });
+    }
+
     /**
      * Executes the request and returns PluginResult.
      *
@@ -42,21 +98,37 @@ public class VideoPlayer extends VideoPlayerOld {
         if ("play".equals(action) || "display".equals(action)) {
             this.callbackContext = callbackContext;
 
-            CordovaResourceApi resourceApi = webView.getResourceApi();
-            String target = args.getString(0);
+            final long requestTime = SystemClock.elapsedRealtime();
+            final boolean isFirstPlay = firstPlay && "play".equals(action);
+            if ("play".equals(action)) {
+                firstPlay = false;
+            }
+
+            Uri sourceUri = remapUri(args.getString(0));
             final JSONObject options = args.getJSONObject(1);
 
-            String fileUriStr;
-            try {
-                Uri targetUri = resourceApi.remapUri(Uri.parse(target));
-                fileUriStr = targetUri.toString();
-            } catch (IllegalArgumentException e) {
-                fileUriStr = target;
+            long showImageDuration = options.optLong("showImageDuration", -1);
+            if (options.optBoolean("governor", false)) {
+                if (governor == null) {
+                    governor = new PlaybackGovernor(cordova.getActivity());
+                    governor.start();
+                }
+                List<Uri> variants = new ArrayList<Uri>();
+                JSONArray variantsArg = options.optJSONArray("variants");
+                if (variantsArg != null) {
+                    for (int i = 0; i < variantsArg.length(); i++) {
+                        variants.add(remapUri(variantsArg.getString(i)));
+                    }
+                }
+                sourceUri = governor.selectSource(sourceUri, variants);
+                if ("display".equals(action)) {
+                    showImageDuration = governor.adjustImageDuration(showImageDuration);
+                }
             }
 
-            Log.v(LOG_TAG, fileUriStr);
+            final Uri targetUri = sourceUri;
+            final long imageDuration = showImageDuration;
 
-            final Uri targetUri = Uri.parse(fileUriStr);
             cordova.getActivity().runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
@@ -70,11 +142,28 @@ public class VideoPlayer extends VideoPlayerOld {
                             .putExtra(VideoPlayerDialog.EXTRA_SCALING_MODE, options.optInt("scalingMode", MediaPlayer.VIDEO_SCALING_MODE_SCALE_TO_FIT))
                             .putExtra(VideoPlayerDialog.EXTRA_RESULT_RECEIVER, resultReceiver)
                             .putExtra(VideoPlayerDialog.EXTRA_SHOW_IMAGE, "display".equals(action))
-                            .putExtra(VideoPlayerDialog.EXTRA_SHOW_IMAGE_DURATION, options.optLong("showImageDuration", -1))
+                            .putExtra(VideoPlayerDialog.EXTRA_SHOW_IMAGE_DURATION, imageDuration)
+                            .putExtra(VideoPlayerDialog.EXTRA_MATCH_FRAME_RATE, options.optBoolean("matchFrameRate", false))
+                            .putExtra(VideoPlayerDialog.EXTRA_REQUEST_TIME, requestTime)
+                            .putExtra(VideoPlayerDialog.EXTRA_FIRST_PLAY, isFirstPlay)
+                            .putExtra(VideoPlayerDialog.EXTRA_WARM, warmedUp)
+                            .putExtra(VideoPlayerDialog.EXTRA_AUDIO_TRACK, options.optInt("audioTrack", -1))
                             .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
                             .addFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
+                    JSONObject encryption = options.optJSONObject("encryption");
+                    if (encryption != null) {
+                        launchIntent
+                                .putExtra(VideoPlayerDialog.EXTRA_KEY_ID, encryption.optString("keyId"))
+                                .putExtra(VideoPlayerDialog.EXTRA_IV, encryption.optString("iv"));
+                    }
                     if (dialog == null) {
-                        dialog = new VideoPlayerDialog(cordova.getActivity(), launchIntent);
+                        if (warmDialog != null && warmDialog.getOwnerActivity() == cordova.getActivity()) {
+                            dialog = warmDialog;
+                            dialog.setParams(launchIntent);
+                        } else {
+                            dialog = new VideoPlayerDialog(cordova.getActivity(), launchIntent);
+                        }
+                        warmDialog = null;
                         dialog.show();
                     } else {
                         dialog.onNewIntent(launchIntent);
@@ -109,11 +198,140 @@ public class VideoPlayer extends VideoPlayerOld {
                 callbackContext.sendPluginResult(result);
             }
 
+            return true;
+        } else if ("tracks".equals(action)) {
+            cordova.getActivity().runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (dialog == null || !dialog.isShowing()) {
+                        callbackContext.error("No video playing");
+                        return;
+                    }
+                    try {
+                        callbackContext.success(dialog.getTracks());
+                    } catch (Exception e) {
+                        Log.e(LOG_TAG, "Failed to list tracks", e);
+                        callbackContext.error(e.getLocalizedMessage());
+                    }
+                }
+            });
+
+            return true;
+        } else if ("metrics".equals(action)) {
+            callbackContext.success(PlaybackMetrics.drain());
+
+            return true;
+        } else if ("proofOfPlay".equals(action)) {
+            JSONObject optionsArg = args.optJSONObject(0);
+            boolean drain = optionsArg != null && optionsArg.optBoolean("drain", false);
+
+            ProofOfPlayLog.get(cordova.getActivity()).export(drain, new ProofOfPlayLog.ExportCallback() {
+                @Override
+                public void onExported(JSONArray records, Exception error) {
+                    if (error != null) {
+                        callbackContext.error(error.getLocalizedMessage());
+                    } else {
+                        callbackContext.success(records);
+                    }
+                }
+            });
+
+            return true;
+        } else if ("benchmarkDecryption".equals(action)) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                callbackContext.error("Encrypted playback requires Android 6.0");
+                return true;
+            }
+
+            final String path = VideoPlayerDialog.stripFileProtocol(remapUri(args.getString(0)).toString());
+            final JSONObject encryption = args.getJSONObject(1).getJSONObject("encryption");
+
+            cordova.getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        VideoKeyProvider provider = keyProvider;
+                        byte[] key = provider == null ? null : provider.getKey(encryption.optString("keyId"));
+                        if (key == null) {
+                            callbackContext.error("No key for " + encryption.optString("keyId"));
+                            return;
+                        }
+                        callbackContext.success(AesCtrMediaDataSource.benchmark(cordova.getActivity(), path,
+                                key, AesCtrMediaDataSource.hexToBytes(encryption.optString("iv"))));
+                    } catch (Exception e) {
+                        Log.e(LOG_TAG, "Failed to benchmark decryption", e);
+                        callbackContext.error(e.getLocalizedMessage());
+                    }
+                }
+            });
+
+            return true;
+        } else if ("thumbnails".equals(action)) {
+            final Uri targetUri = remapUri(args.getString(0));
+            JSONObject optionsArg = args.optJSONObject(1);
+            final JSONObject options = optionsArg != null ? optionsArg : new JSONObject();
+
+            if (thumbnailer == null) {
+                thumbnailer = new VideoThumbnailer(cordova.getActivity());
+            }
+            final VideoThumbnailer thumbnailer = this.thumbnailer;
+            cordova.getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        callbackContext.success(thumbnailer.generate(targetUri,
+                                options.optLong("interval", 10000),
+                                options.optInt("width", 160)));
+                    } catch (Exception e) {
+                        Log.e(LOG_TAG, "Failed to generate thumbnails", e);
+                        callbackContext.error(e.getLocalizedMessage());
+                    }
+                }
+            });
+
             return true;
         }
         return false;
     }
 
+    /**
+     * Registers the provider of the keys used by the "encryption" play option.
+     *
+     * @param provider the key provider, or null to unregister it
+     */
+    public static void setKeyProvider(VideoKeyProvider provider) {
+        keyProvider = provider;
+    }
+
+    static VideoKeyProvider getKeyProvider() {
+        return keyProvider;
+    }
+
+    @Override
+    public void onDestroy() {
+        if (governor != null) {
+            governor.stop();
+            governor = null;
+        }
+        super.onDestroy();
+    }
+
+    private Uri remapUri(String target) {
+        CordovaResourceApi resourceApi = webView.getResourceApi();
+
+        String fileUriStr;
+        try {
+            Uri targetUri = resourceApi.remapUri(Uri.parse(target));
+            fileUriStr = targetUri.toString();
+        } catch (IllegalArgumentException e) {
+            fileUriStr = target;
+        }
+
+        Log.v(LOG_TAG, fileUriStr);
+
+        return Uri.parse(fileUriStr);
+    }
+
 
     private class PlaybackResultReceiver extends ResultReceiver {
 
@@ -2,16 +2,27 @@ package com.moust.cordova.videoplayer;
 
 import android.app.Activity;
 import android.app.Dialog;
+import android.content.Context;
 import android.content.Intent;
 import android.content.res.AssetFileDescriptor;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.AnimatedImageDrawable;
+import android.graphics.drawable.Drawable;
+import android.media.MediaDataSource;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
 import android.media.MediaPlayer;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.ResultReceiver;
 import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.util.Log;
+import android.view.Display;
 import android.view.Gravity;
+import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.View;
 import android.view.ViewGroup;
@@ -25,6 +36,10 @@ import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
 import com.squareup.picasso.RequestCreator;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.io.IOException;
 
 public class VideoPlayerDialog extends Dialog {
@@ -38,6 +53,13 @@ public class VideoPlayerDialog extends Dialog {
     public static final String EXTRA_RESULT_RECEIVER = "resultReceiver";
     public static final String EXTRA_SHOW_IMAGE = "showImage";
     public static final String EXTRA_SHOW_IMAGE_DURATION = "showImageDuration";
+    public static final String EXTRA_MATCH_FRAME_RATE = "matchFrameRate";
+    public static final String EXTRA_KEY_ID = "keyId";
+    public static final String EXTRA_IV = "iv";
+    public static final String EXTRA_REQUEST_TIME = "requestTime";
+    public static final String EXTRA_FIRST_PLAY = "firstPlay";
+    public static final String EXTRA_WARM = "warm";
+    public static final String EXTRA_AUDIO_TRACK = "audioTrack";
 
     public static final int RESULT_PLAYBACK_ENDED = 1;
     public static final int RESULT_FINISHING = 2;
@@ -53,9 +75,23 @@ public class VideoPlayerDialog extends Dialog {
     private boolean showImage = false;
     private boolean skipPlaceholder = false;
 
+    private float contentFrameRate = 0;
+    private boolean frameRatePrepared = false;
+    private int frameRateRequest = 0;
+    private boolean frameRateRequested = false;
+    private int originalDisplayModeId = -1;
+
+    private FrameStats frameStats;
+
+    private AnimatedImageLoader animatedImageLoader;
+    private int imageRequest = 0;
+    private String itemUri;
+    private long itemStartTime;
+
     private final Runnable onPlaybackEnd = new Runnable() {
         @Override
         public void run() {
+            finishItem("completed");
             if (player != null) {
                 try {
                     if (player.isPlaying()) {
@@ -92,6 +128,15 @@ public class VideoPlayerDialog extends Dialog {
 
 
     public VideoPlayerDialog(@NonNull Activity activity, @NonNull Intent params) {
+        this(activity);
+        setParams(params);
+    }
+
+    /**
+     * Builds the window and its views without any item, so the dialog can be prepared
+     * ahead of the first playback and given its parameters later with {@link #setParams(Intent)}.
+     */
+    public VideoPlayerDialog(@NonNull Activity activity) {
         super(activity, android.R.style.Theme_NoTitleBar);
         setOwnerActivity(activity);
         setCancelable(true);
@@ -108,9 +153,6 @@ public class VideoPlayerDialog extends Dialog {
         lp.dimAmount = 0;
         getWindow().setAttributes(lp);
 
-        this.params = params;
-        determineMode(params);
-
         FrameLayout content = new FrameLayout(getContext());
         content.setId(android.R.id.content);
         content.setMeasureAllChildren(true);
@@ -125,6 +167,14 @@ public class VideoPlayerDialog extends Dialog {
         content.addView(playerView, new FrameLayout.LayoutParams(FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT, Gravity.CENTER));
     }
 
+    /**
+     * Sets the item to handle once the dialog is shown.
+     */
+    public void setParams(@NonNull Intent params) {
+        this.params = params;
+        determineMode(params);
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -144,10 +194,33 @@ public class VideoPlayerDialog extends Dialog {
                             imageView.setVisibility(View.INVISIBLE);
                         }
                     }, 100);
+                    selectTracks(mp);
+                    if (params != null && params.getBooleanExtra(EXTRA_MATCH_FRAME_RATE, false)) {
+                        frameRatePrepared = true;
+                        float frameRate = readTrackFrameRate(mp);
+                        if (frameRate > 0) {
+                            contentFrameRate = frameRate;
+                        }
+                        if (contentFrameRate > 0) {
+                            matchFrameRate(contentFrameRate);
+                        } else {
+                            Log.d(TAG, "Content frame rate not known yet");
+                        }
+                    }
                     mp.start();
                 }
             }
         });
+        player.setOnInfoListener(new MediaPlayer.OnInfoListener() {
+            @Override
+            public boolean onInfo(MediaPlayer mp, int what, int extra) {
+                if (what == MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START && !showImage) {
+                    itemStartTime = System.currentTimeMillis();
+                    recordStartup();
+                }
+                return false;
+            }
+        });
         player.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
             @Override
             public void onCompletion(MediaPlayer mp) {
@@ -163,6 +236,7 @@ public class VideoPlayerDialog extends Dialog {
                 Log.e(TAG, error);
 
                 if (!showImage) {
+                    finishItem("error", what, extra);
                     if (resultReceiver != null) {
                         Bundle resultData = new Bundle(1);
                         resultData.putString("error", error);
@@ -185,6 +259,7 @@ public class VideoPlayerDialog extends Dialog {
         } catch (Exception e) {
             Log.e(TAG, "Failed to prepare player", e);
             if (!showImage) {
+                finishItem("error");
                 if (resultReceiver != null) {
                     Bundle resultData = new Bundle(1);
                     resultData.putString("error", e.getLocalizedMessage());
@@ -232,6 +307,14 @@ public class VideoPlayerDialog extends Dialog {
             return;
         }
 
+        beginItem(intent);
+        frameRateRequest++;
+        if (showImage || !intent.getBooleanExtra(EXTRA_MATCH_FRAME_RATE, false)) {
+            restoreDisplayMode();
+        }
+        imageRequest++;
+        stopAnimation();
+
         if (showImage) {
             RequestCreator requestCreator = Picasso.get()
                     .load(intent.getData())
@@ -256,13 +339,20 @@ public class VideoPlayerDialog extends Dialog {
                         // ignore
                     }
                 }
-                requestCreator
-                        .into(imageView);
+                loadImage(intent.getData(), requestCreator, new Callback() {
+                    @Override
+                    public void onSuccess() {
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        finishItem("error");
+                    }
+                });
             } else {
                 playerView.bringToFront();
                 imageView.setVisibility(View.VISIBLE);
-                requestCreator
-                        .into(imageView, new Callback() {
+                loadImage(intent.getData(), requestCreator, new Callback() {
                             @Override
                             public void onSuccess() {
                                 imageView.postOnAnimationDelayed(new Runnable() {
@@ -284,6 +374,7 @@ public class VideoPlayerDialog extends Dialog {
 
                             @Override
                             public void onError(Exception e) {
+                                finishItem("error");
                                 imageView.postOnAnimationDelayed(new Runnable() {
                                     @Override
                                     public void run() {
@@ -329,7 +420,24 @@ public class VideoPlayerDialog extends Dialog {
             imageView.removeCallbacks(onPlaybackEnd);
 
             final String path = stripFileProtocol(intent.getData().toString());
-            if (path.startsWith(ASSETS)) {
+            resolveFrameRate(intent, path);
+            if (intent.hasExtra(EXTRA_KEY_ID)) {
+                try {
+                    player.setDataSource(openEncrypted(path, intent.getStringExtra(EXTRA_KEY_ID), intent.getStringExtra(EXTRA_IV)));
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to prepare player", e);
+                    finishItem("error");
+                    if (resultReceiver != null) {
+                        Bundle resultData = new Bundle(1);
+                        resultData.putString("error", e.getLocalizedMessage());
+                        resultReceiver.send(RESULT_ERROR, resultData);
+                        resultReceiver = null;
+                    }
+
+                    cancel();
+                    return;
+                }
+            } else if (path.startsWith(ASSETS)) {
                 String f = path.substring(15);
                 AssetFileDescriptor fd = null;
                 try {
@@ -337,6 +445,7 @@ public class VideoPlayerDialog extends Dialog {
                     player.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
                 } catch (Exception ee) {
                     Log.e(TAG, "Failed to prepare player", ee);
+                    finishItem("error");
                     if (resultReceiver != null) {
                         Bundle resultData = new Bundle(1);
                         resultData.putString("error", ee.getLocalizedMessage());
@@ -352,6 +461,7 @@ public class VideoPlayerDialog extends Dialog {
                     player.setDataSource(path);
                 } catch (Exception eee) {
                     Log.e(TAG, "Failed to prepare player", eee);
+                    finishItem("error");
                     if (resultReceiver != null) {
                         Bundle resultData = new Bundle(1);
                         resultData.putString("error", eee.getLocalizedMessage());
@@ -411,9 +521,386 @@ public class VideoPlayerDialog extends Dialog {
         }
     }
 
+    /**
+     * Selects the requested alternate audio track, given as an index among the audio tracks
+     * listed by {@link #getTracks()}. MediaPlayer can't select video tracks, nor deselect audio
+     * ones, so a muted video still has its audio decoded.
+     */
+    private void selectTracks(MediaPlayer mp) {
+        Intent intent = params;
+        int audioTrack = intent == null ? -1 : intent.getIntExtra(EXTRA_AUDIO_TRACK, -1);
+        if (audioTrack < 0 || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return;
+        }
+
+        try {
+            MediaPlayer.TrackInfo[] tracks = mp.getTrackInfo();
+            int audioCount = 0;
+            for (int i = 0; i < tracks.length; i++) {
+                if (tracks[i].getTrackType() == MediaPlayer.TrackInfo.MEDIA_TRACK_TYPE_AUDIO) {
+                    if (audioCount == audioTrack) {
+                        mp.selectTrack(i);
+                        return;
+                    }
+                    audioCount++;
+                }
+            }
+            Log.w(TAG, "No audio track " + audioTrack + ", only " + audioCount);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to select audio track " + audioTrack, e);
+        }
+    }
+
+    /**
+     * Lists the tracks of the current video.
+     */
+    public JSONArray getTracks() throws JSONException {
+        JSONArray result = new JSONArray();
+        if (player == null || showImage || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return result;
+        }
+
+        MediaPlayer.TrackInfo[] tracks = player.getTrackInfo();
+        int[] counts = new int[8];
+        for (int i = 0; i < tracks.length; i++) {
+            int type = tracks[i].getTrackType();
+            JSONObject track = new JSONObject();
+            track.put("type", trackTypeName(type));
+            track.put("index", type >= 0 && type < counts.length ? counts[type]++ : 0);
+            track.put("language", tracks[i].getLanguage());
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && tracks[i].getFormat() != null) {
+                track.put("mime", tracks[i].getFormat().getString(MediaFormat.KEY_MIME));
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                track.put("selected", player.getSelectedTrack(type) == i);
+            }
+            result.put(track);
+        }
+        return result;
+    }
+
+    private static String trackTypeName(int type) {
+        switch (type) {
+            case MediaPlayer.TrackInfo.MEDIA_TRACK_TYPE_VIDEO:
+                return "video";
+            case MediaPlayer.TrackInfo.MEDIA_TRACK_TYPE_AUDIO:
+                return "audio";
+            case MediaPlayer.TrackInfo.MEDIA_TRACK_TYPE_TIMEDTEXT:
+                return "timedtext";
+            case MediaPlayer.TrackInfo.MEDIA_TRACK_TYPE_SUBTITLE:
+                return "subtitle";
+            case MediaPlayer.TrackInfo.MEDIA_TRACK_TYPE_METADATA:
+                return "metadata";
+            default:
+                return "unknown";
+        }
+    }
+
+    /**
+     * Asks the display to switch to a refresh rate matching the content, so 24/25 fps videos
+     * don't judder through a 3:2 pulldown on 60 Hz panels.
+     */
+    private void matchFrameRate(float frameRate) {
+        Log.d(TAG, "Content frame rate: " + frameRate);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Surface surface = playerView.getHolder().getSurface();
+            if (surface != null && surface.isValid()) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                    // The default strategy only allows seamless switches, 60 -> 50/24 Hz usually isn't
+                    surface.setFrameRate(frameRate, Surface.FRAME_RATE_COMPATIBILITY_FIXED_SOURCE, Surface.CHANGE_FRAME_RATE_ALWAYS);
+                } else {
+                    surface.setFrameRate(frameRate, Surface.FRAME_RATE_COMPATIBILITY_FIXED_SOURCE);
+                }
+                frameRateRequested = true;
+            }
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            Display display = getWindow().getWindowManager().getDefaultDisplay();
+            Display.Mode current = display.getMode();
+            Display.Mode best = null;
+            int bestMultiple = Integer.MAX_VALUE;
+            for (Display.Mode mode : display.getSupportedModes()) {
+                if (mode.getPhysicalWidth() != current.getPhysicalWidth() || mode.getPhysicalHeight() != current.getPhysicalHeight()) {
+                    continue;
+                }
+                // Lowest refresh rate showing every frame the same number of times
+                float ratio = mode.getRefreshRate() / frameRate;
+                int multiple = Math.round(ratio);
+                if (multiple >= 1 && Math.abs(ratio - multiple) < 0.01F && multiple < bestMultiple) {
+                    best = mode;
+                    bestMultiple = multiple;
+                }
+            }
+            if (best == null) {
+                Log.d(TAG, "No display mode matches " + frameRate + " fps");
+                return;
+            }
+
+            WindowManager.LayoutParams lp = getWindow().getAttributes();
+            if (originalDisplayModeId < 0) {
+                originalDisplayModeId = lp.preferredDisplayModeId;
+            }
+            if (lp.preferredDisplayModeId != best.getModeId()) {
+                Log.d(TAG, "Switching display mode to " + best.getRefreshRate() + " Hz");
+                lp.preferredDisplayModeId = best.getModeId();
+                getWindow().setAttributes(lp);
+            }
+        }
+    }
+
+    private void restoreDisplayMode() {
+        if (frameRateRequested && Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Surface surface = playerView.getHolder().getSurface();
+            if (surface != null && surface.isValid()) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                    surface.setFrameRate(0, Surface.FRAME_RATE_COMPATIBILITY_DEFAULT, Surface.CHANGE_FRAME_RATE_ALWAYS);
+                } else {
+                    surface.setFrameRate(0, Surface.FRAME_RATE_COMPATIBILITY_DEFAULT);
+                }
+            }
+        }
+        frameRateRequested = false;
+
+        if (originalDisplayModeId >= 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            WindowManager.LayoutParams lp = getWindow().getAttributes();
+            lp.preferredDisplayModeId = originalDisplayModeId;
+            getWindow().setAttributes(lp);
+        }
+        originalDisplayModeId = -1;
+    }
+
+    /**
+     * Reads the frame rate from the container in the background, as most engines only report
+     * the mime type through getTrackInfo. It is applied at onPrepared if known by then, otherwise
+     * as soon as it is. Remote streams are skipped as it would mean downloading the header twice,
+     * and encrypted files can only be parsed by the player.
+     */
+    private void resolveFrameRate(Intent intent, final String path) {
+        contentFrameRate = 0;
+        frameRatePrepared = false;
+        final int request = frameRateRequest;
+        if (!intent.getBooleanExtra(EXTRA_MATCH_FRAME_RATE, false) || intent.hasExtra(EXTRA_KEY_ID) || !path.startsWith("/")) {
+            return;
+        }
+        final Context context = getContext().getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final float frameRate = extractFrameRate(context, path);
+                playerView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (request != frameRateRequest || contentFrameRate > 0 || frameRate <= 0) {
+                            return;
+                        }
+                        contentFrameRate = frameRate;
+                        if (frameRatePrepared) {
+                            matchFrameRate(frameRate);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private static float readTrackFrameRate(MediaPlayer mp) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            try {
+                for (MediaPlayer.TrackInfo track : mp.getTrackInfo()) {
+                    if (track.getTrackType() == MediaPlayer.TrackInfo.MEDIA_TRACK_TYPE_VIDEO) {
+                        float frameRate = getFrameRate(track.getFormat());
+                        if (frameRate > 0) {
+                            return frameRate;
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                // ignore
+            }
+        }
+        return 0;
+    }
+
+    private static float extractFrameRate(Context context, String path) {
+        MediaExtractor extractor = new MediaExtractor();
+        AssetFileDescriptor fd = null;
+        try {
+            if (path.startsWith(ASSETS)) {
+                fd = context.getAssets().openFd(path.substring(15));
+                extractor.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+            } else {
+                extractor.setDataSource(path);
+            }
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("video/")) {
+                    return getFrameRate(format);
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to read frame rate", e);
+        } finally {
+            extractor.release();
+            if (fd != null) {
+                try {
+                    fd.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static float getFrameRate(MediaFormat format) {
+        if (format == null || !format.containsKey(MediaFormat.KEY_FRAME_RATE)) {
+            return 0;
+        }
+        try {
+            return format.getInteger(MediaFormat.KEY_FRAME_RATE);
+        } catch (ClassCastException e) {
+            return format.getFloat(MediaFormat.KEY_FRAME_RATE);
+        }
+    }
+
+    /**
+     * Shows the image, through the animated image decoder when it may be animated, otherwise
+     * or when that fails through Picasso.
+     */
+    private void loadImage(final Uri uri, final RequestCreator requestCreator, final Callback callback) {
+        // Results of a replaced item must not be reported against the current one
+        final int request = imageRequest;
+        final Callback current = new Callback() {
+            @Override
+            public void onSuccess() {
+                if (request == imageRequest) {
+                    callback.onSuccess();
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (request == imageRequest) {
+                    callback.onError(e);
+                }
+            }
+        };
+
+        if (!AnimatedImageLoader.isSupported(uri)) {
+            requestCreator.into(imageView, current);
+            return;
+        }
+
+        if (animatedImageLoader == null) {
+            animatedImageLoader = new AnimatedImageLoader(getContext());
+        }
+        Picasso.get().cancelRequest(imageView);
+        animatedImageLoader.load(uri, imageView.getWidth(), imageView.getHeight(), new AnimatedImageLoader.Callback() {
+            @Override
+            public void onLoaded(Drawable drawable) {
+                if (request != imageRequest) {
+                    return;
+                }
+                imageView.setImageDrawable(drawable);
+                if (drawable instanceof Animatable) {
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && drawable instanceof AnimatedImageDrawable) {
+                        ((AnimatedImageDrawable) drawable).setRepeatCount(AnimatedImageDrawable.REPEAT_INFINITE);
+                    }
+                    ((Animatable) drawable).start();
+                }
+                current.onSuccess();
+            }
+
+            @Override
+            public void onStatic() {
+                if (request != imageRequest) {
+                    return;
+                }
+                requestCreator.into(imageView, current);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (request != imageRequest) {
+                    return;
+                }
+                Log.w(TAG, "Failed to decode animated image " + uri, e);
+                requestCreator.into(imageView, current);
+            }
+        });
+    }
+
+    private void stopAnimation() {
+        if (imageView != null && imageView.getDrawable() instanceof Animatable) {
+            ((Animatable) imageView.getDrawable()).stop();
+        }
+    }
+
+    private MediaDataSource openEncrypted(String path, String keyId, String iv) throws IOException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            throw new IOException("Encrypted playback requires Android 6.0");
+        }
+        VideoKeyProvider keyProvider = VideoPlayer.getKeyProvider();
+        byte[] key = keyProvider == null ? null : keyProvider.getKey(keyId);
+        if (key == null) {
+            throw new IOException("No key for " + keyId);
+        }
+        return AesCtrMediaDataSource.open(getContext(), path, key, AesCtrMediaDataSource.hexToBytes(iv));
+    }
+
+    /**
+     * Records the latency between the play request and the first rendered video frame.
+     */
+    private void recordStartup() {
+        Intent intent = params;
+        long requestTime = intent == null ? 0 : intent.getLongExtra(EXTRA_REQUEST_TIME, 0);
+        if (requestTime <= 0) {
+            return;
+        }
+        try {
+            JSONObject data = new JSONObject();
+            data.put("uri", String.valueOf(intent.getData()));
+            data.put("latencyMs", SystemClock.elapsedRealtime() - requestTime);
+            data.put("firstPlay", intent.getBooleanExtra(EXTRA_FIRST_PLAY, false));
+            data.put("warm", intent.getBooleanExtra(EXTRA_WARM, false));
+            PlaybackMetrics.record("startup", data);
+        } catch (JSONException e) {
+            // ignore
+        }
+    }
+
+    private void beginItem(Intent intent) {
+        finishItem("replaced");
+        itemUri = intent.getData().toString();
+        itemStartTime = System.currentTimeMillis();
+        frameStats = new FrameStats(getWindow(), intent.getData(), showImage ? "image" : "video");
+        frameStats.start();
+    }
+
+    private void finishItem(String result) {
+        finishItem(result, 0, 0);
+    }
+
+    /**
+     * Records the summary and the proof of play of the current item, before its player gets stopped or reset.
+     */
+    private void finishItem(String result, int what, int extra) {
+        FrameStats stats = frameStats;
+        if (stats == null) {
+            return;
+        }
+        frameStats = null;
+        PlaybackMetrics.record("item", stats.finish(result, stats.isVideo() ? player : null));
+        ProofOfPlayLog.get(getContext()).record(itemUri, stats.isVideo() ? "video" : "image",
+                itemStartTime, System.currentTimeMillis(), result, what, extra);
+    }
+
     @Override
     protected void onStop() {
         super.onStop();
+        finishItem("stopped");
+        restoreDisplayMode();
         if (player != null) {
             try {
                 if (player.isPlaying()) {
@@ -427,6 +914,9 @@ public class VideoPlayerDialog extends Dialog {
         if (imageView != null) {
             imageView.removeCallbacks(onPlaybackEnd);
         }
+        frameRateRequest++;
+        imageRequest++;
+        stopAnimation();
         if (resultReceiver != null) {
             resultReceiver.send(RESULT_FINISHING, Bundle.EMPTY);
         }
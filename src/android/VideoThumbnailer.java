@@ -0,0 +1,421 @@
+package com.moust.cordova.videoplayer;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracts preview frames from a video and packs them into a single JPEG sprite sheet
+ * with a JSON index. Results are cached by a fingerprint of the source content.
+ */
+public class VideoThumbnailer {
+
+    private static final String TAG = "VideoThumbnailer";
+
+    private static final String ASSETS = "/android_asset/";
+
+    private static final String CACHE_DIR = "videoplayer-thumbnails";
+
+    private static final int MAX_FRAMES = 400;
+
+    private static final int MAX_FRAME_SIZE = 640;
+
+    private static final int MAX_SHEET_PIXELS = 4096 * 4096;
+
+    private static final int MAX_THREADS = 4;
+
+    private static final int FINGERPRINT_CHUNK = 64 * 1024;
+
+    private static final int JPEG_QUALITY = 75;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Context context;
+
+    private final ThreadPoolExecutor executor;
+
+    public VideoThumbnailer(Context context) {
+        this.context = context.getApplicationContext();
+
+        int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Builds (or loads from cache) the sprite sheet for the given video.
+     *
+     * @param uri        the remapped video URI
+     * @param intervalMs the requested time between two frames, in milliseconds
+     * @param width      the width of a single frame, in pixels
+     * @return the sprite sheet index
+     */
+    public JSONObject generate(Uri uri, long intervalMs, int width) throws IOException, JSONException {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("Invalid interval: " + intervalMs);
+        }
+        if (width <= 0) {
+            throw new IllegalArgumentException("Invalid width: " + width);
+        }
+
+        File cacheDir = new File(context.getCacheDir(), CACHE_DIR);
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("Unable to create " + cacheDir);
+        }
+
+        String key = fingerprint(uri, intervalMs, width);
+        File spriteFile = new File(cacheDir, key + ".jpg");
+        File indexFile = new File(cacheDir, key + ".json");
+        if (spriteFile.isFile() && indexFile.isFile()) {
+            try {
+                return new JSONObject(new String(readFully(indexFile), UTF8));
+            } catch (JSONException e) {
+                Log.w(TAG, "Discarding corrupted index " + indexFile);
+            }
+        }
+
+        long durationMs;
+        int videoWidth;
+        int videoHeight;
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        AssetFileDescriptor afd = null;
+        try {
+            afd = setDataSource(retriever, uri);
+            durationMs = parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION));
+            videoWidth = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+            videoHeight = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+            long rotation = parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION));
+            if (rotation == 90 || rotation == 270) {
+                int tmp = videoWidth;
+                videoWidth = videoHeight;
+                videoHeight = tmp;
+            }
+        } finally {
+            release(retriever, afd);
+        }
+
+        if (durationMs <= 0 || videoWidth <= 0 || videoHeight <= 0) {
+            throw new IOException("Unable to read video metadata: " + uri);
+        }
+
+        // Frames are at most MAX_FRAME_SIZE on their longest side, keeping the video aspect ratio
+        int frameWidthValue = Math.min(width, MAX_FRAME_SIZE);
+        int frameHeightValue = Math.max(1, Math.round((float) frameWidthValue * videoHeight / videoWidth));
+        if (frameHeightValue > MAX_FRAME_SIZE) {
+            frameHeightValue = MAX_FRAME_SIZE;
+            frameWidthValue = Math.max(1, Math.round((float) MAX_FRAME_SIZE * videoWidth / videoHeight));
+        }
+        final int frameWidth = frameWidthValue;
+        final int frameHeight = frameHeightValue;
+
+        // Keep the sheet within a sane memory budget by widening the interval on long recordings
+        int maxFrames = (int) Math.max(1, Math.min(MAX_FRAMES, (long) MAX_SHEET_PIXELS / ((long) frameWidth * frameHeight)));
+        int count = (int) Math.min(maxFrames, Math.max(1, (durationMs + intervalMs - 1) / intervalMs));
+        long effectiveIntervalMs = Math.max(intervalMs, (durationMs + count - 1) / count);
+
+        final int columns = (int) Math.ceil(Math.sqrt(count));
+        final int rows = (count + columns - 1) / columns;
+
+        final long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = Math.min(i * effectiveIntervalMs, durationMs - 1);
+        }
+
+        final Bitmap sprite;
+        try {
+            sprite = Bitmap.createBitmap(columns * frameWidth, rows * frameHeight, Bitmap.Config.RGB_565);
+        } catch (OutOfMemoryError e) {
+            throw new IOException("Not enough memory for a " + (columns * frameWidth) + "x" + (rows * frameHeight) + " sprite sheet");
+        }
+        final Canvas canvas = new Canvas(sprite);
+        canvas.drawColor(Color.BLACK);
+
+        try {
+            // Every worker owns its retriever and a contiguous range of timestamps
+            int workers = Math.min(executor.getMaximumPoolSize(), count);
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+            for (int w = 0; w < workers; w++) {
+                final int from = (int) ((long) count * w / workers);
+                final int to = (int) ((long) count * (w + 1) / workers);
+                final Uri source = uri;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        extractRange(source, times, from, to, columns, frameWidth, frameHeight, canvas);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while extracting frames");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(String.valueOf(cause));
+                }
+            }
+
+            // Unique temporary files: concurrent calls for the same video must not write into each other
+            File tmpSprite = File.createTempFile(key, ".tmp", cacheDir);
+            try {
+                FileOutputStream out = new FileOutputStream(tmpSprite);
+                try {
+                    sprite.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+                } finally {
+                    out.close();
+                }
+                if (!tmpSprite.renameTo(spriteFile)) {
+                    throw new IOException("Unable to write " + spriteFile);
+                }
+            } finally {
+                tmpSprite.delete();
+            }
+        } finally {
+            sprite.recycle();
+        }
+
+        JSONArray frames = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            JSONObject frame = new JSONObject();
+            frame.put("time", times[i]);
+            frame.put("x", (i % columns) * frameWidth);
+            frame.put("y", (i / columns) * frameHeight);
+            frames.put(frame);
+        }
+
+        JSONObject index = new JSONObject();
+        index.put("sprite", Uri.fromFile(spriteFile).toString());
+        index.put("width", frameWidth);
+        index.put("height", frameHeight);
+        index.put("columns", columns);
+        index.put("rows", rows);
+        index.put("interval", effectiveIntervalMs);
+        index.put("duration", durationMs);
+        index.put("frames", frames);
+
+        File tmpIndex = File.createTempFile(key, ".tmp", cacheDir);
+        try {
+            FileOutputStream out = new FileOutputStream(tmpIndex);
+            try {
+                out.write(index.toString().getBytes(UTF8));
+            } finally {
+                out.close();
+            }
+            if (!tmpIndex.renameTo(indexFile)) {
+                throw new IOException("Unable to write " + indexFile);
+            }
+        } finally {
+            tmpIndex.delete();
+        }
+
+        return index;
+    }
+
+    private void extractRange(Uri uri, long[] times, int from, int to, int columns, int frameWidth, int frameHeight, Canvas canvas) throws IOException {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        AssetFileDescriptor afd = null;
+        try {
+            afd = setDataSource(retriever, uri);
+            for (int i = from; i < to; i++) {
+                long timeUs = times[i] * 1000;
+                Bitmap frame;
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                    // Decoded straight at the target size, no full-resolution copy is made
+                    frame = retriever.getScaledFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, frameWidth, frameHeight);
+                } else {
+                    Bitmap full = retriever.getFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+                    frame = full == null ? null : Bitmap.createScaledBitmap(full, frameWidth, frameHeight, true);
+                    if (full != null && full != frame) {
+                        full.recycle();
+                    }
+                }
+                if (frame == null) {
+                    Log.w(TAG, "No frame at " + times[i] + "ms in " + uri);
+                    continue;
+                }
+                synchronized (canvas) {
+                    canvas.drawBitmap(frame, null, new Rect(
+                            (i % columns) * frameWidth, (i / columns) * frameHeight,
+                            (i % columns + 1) * frameWidth, (i / columns + 1) * frameHeight), null);
+                }
+                frame.recycle();
+            }
+        } finally {
+            release(retriever, afd);
+        }
+    }
+
+    private AssetFileDescriptor setDataSource(MediaMetadataRetriever retriever, Uri uri) throws IOException {
+        String path = VideoPlayerDialog.stripFileProtocol(uri.toString());
+        if (path.startsWith(ASSETS)) {
+            AssetFileDescriptor afd = context.getAssets().openFd(path.substring(ASSETS.length()));
+            retriever.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            return afd;
+        }
+        String scheme = uri.getScheme();
+        if ("http".equals(scheme) || "https".equals(scheme)) {
+            retriever.setDataSource(uri.toString(), new HashMap<String, String>());
+        } else if (path.startsWith("/")) {
+            retriever.setDataSource(path);
+        } else {
+            retriever.setDataSource(context, uri);
+        }
+        return null;
+    }
+
+    private static void release(MediaMetadataRetriever retriever, AssetFileDescriptor afd) {
+        try {
+            retriever.release();
+        } catch (Exception e) {
+            // ignore
+        }
+        if (afd != null) {
+            try {
+                afd.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Hashes the file size with its first and last chunks, so that a cached sheet is reused
+     * whatever path the same content is reached through, without reading the whole recording.
+     * Remote sources can't be read cheaply and are keyed by their URI instead.
+     */
+    private String fingerprint(Uri uri, long intervalMs, int width) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getLocalizedMessage());
+        }
+
+        String path = VideoPlayerDialog.stripFileProtocol(uri.toString());
+        String scheme = uri.getScheme();
+        if (path.startsWith(ASSETS)) {
+            AssetFileDescriptor afd = context.getAssets().openFd(path.substring(ASSETS.length()));
+            FileInputStream in = afd.createInputStream();
+            try {
+                digestRange(digest, in.getChannel(), afd.getStartOffset(), afd.getLength());
+            } finally {
+                in.close();
+            }
+        } else if ("content".equals(scheme)) {
+            AssetFileDescriptor afd = context.getContentResolver().openAssetFileDescriptor(uri, "r");
+            if (afd == null) {
+                throw new IOException("Unable to open " + uri);
+            }
+            FileInputStream in = afd.createInputStream();
+            try {
+                long length = afd.getLength();
+                if (length == AssetFileDescriptor.UNKNOWN_LENGTH) {
+                    length = in.getChannel().size() - afd.getStartOffset();
+                }
+                digestRange(digest, in.getChannel(), afd.getStartOffset(), length);
+            } finally {
+                in.close();
+            }
+        } else if (path.startsWith("/")) {
+            FileInputStream in = new FileInputStream(path);
+            try {
+                digestRange(digest, in.getChannel(), 0, in.getChannel().size());
+            } finally {
+                in.close();
+            }
+        } else {
+            digest.update(uri.toString().getBytes(UTF8));
+        }
+        digest.update(("|" + intervalMs + "|" + width).getBytes(UTF8));
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    private static void digestRange(MessageDigest digest, FileChannel channel, long offset, long length) throws IOException {
+        digest.update(Long.toString(length).getBytes(UTF8));
+        ByteBuffer buffer = ByteBuffer.allocate(FINGERPRINT_CHUNK);
+        digestChunk(digest, channel, buffer, offset, Math.min(length, FINGERPRINT_CHUNK));
+        if (length > FINGERPRINT_CHUNK) {
+            long tail = Math.max(FINGERPRINT_CHUNK, length - FINGERPRINT_CHUNK);
+            digestChunk(digest, channel, buffer, offset + tail, length - tail);
+        }
+    }
+
+    private static void digestChunk(MessageDigest digest, FileChannel channel, ByteBuffer buffer, long position, long length) throws IOException {
+        buffer.clear();
+        buffer.limit((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        digest.update(buffer);
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -7,6 +7,11 @@ module.exports = {
         scalingMode: 1
     },
 
+    THUMBNAILS_OPTIONS: {
+        interval: 10000,
+        width: 160
+    },
+
     SCALING_MODE: {
         SCALE_TO_FIT: 1,
         SCALE_TO_FIT_WITH_CROPPING: 2
@@ -22,6 +27,27 @@ module.exports = {
         exec(successCallback, errorCallback, "VideoPlayer", "display", [path, options]);
     },
 
+    tracks: function (successCallback, errorCallback) {
+        exec(successCallback, errorCallback, "VideoPlayer", "tracks", []);
+    },
+
+    thumbnails: function (path, options, successCallback, errorCallback) {
+        options = this.merge(this.THUMBNAILS_OPTIONS, options);
+        exec(successCallback, errorCallback, "VideoPlayer", "thumbnails", [path, options]);
+    },
+
+    benchmarkDecryption: function (path, options, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, "VideoPlayer", "benchmarkDecryption", [path, options]);
+    },
+
+    proofOfPlay: function (options, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, "VideoPlayer", "proofOfPlay", [options || {}]);
+    },
+
+    metrics: function (successCallback, errorCallback) {
+        exec(successCallback, errorCallback, "VideoPlayer", "metrics", []);
+    },
+
     close: function (successCallback, errorCallback) {
         exec(successCallback, errorCallback, "VideoPlayer", "close", []);
     },